@@ -23,27 +23,58 @@ public class DistributedSingleton
 {
 	static final String SEMAPHORE = "semaphore";
 	static final String INSTANCE_ID = "instanceID";
+	static final long NO_DEADLINE = 0;
+	static final long ROLLBACK_TIMEOUT = 2000; // Milliseconds a rollback of an acquire with an unknown outcome may take
 
 	private final String instanceID;
-	private final String semaphoreDomain;
+	private final SDBDomainShards semaphoreShards;
 	private final AmazonEC2Client ec2;
 	private final AmazonSimpleDBClient simpleDB;
 	
 	public DistributedSingleton(AmazonEC2Client ec2, AmazonSimpleDBClient simpleDB, String semaphoreDomain, String instanceID)
+	{
+		this(ec2, simpleDB, new SDBDomainShards(semaphoreDomain), instanceID);
+	}
+	
+	/**
+	 * Use this constructor to spread the semaphores over several domains. Each daemon's semaphore lives in the domain
+	 * its daemon name hashes to.
+	 */
+	public DistributedSingleton(AmazonEC2Client ec2, AmazonSimpleDBClient simpleDB, SDBDomainShards semaphoreShards, String instanceID)
 	{
 		this.ec2 = ec2;
 		this.simpleDB = simpleDB;
-		this.semaphoreDomain = semaphoreDomain;
+		this.semaphoreShards = semaphoreShards;
 		this.instanceID = instanceID;
 	}
 	
 	public boolean acquireLock(String daemonName, Logger logger)
 	{
+		return doAcquireLock(daemonName, NO_DEADLINE, logger);
+	}
+	
+	/**
+	 * Same as acquireLock() except the attempt gives up, without the lock, if SimpleDB hasn't responded within timeout
+	 * msecs. Use this from the daemon's running loop so a slow SimpleDB call can't stall it past its next renewal.
+	 */
+	public boolean acquireLock(String daemonName, long timeout, Logger logger)
+	{
+		return doAcquireLock(daemonName, System.currentTimeMillis() + timeout, logger);
+	}
+	
+	private boolean doAcquireLock(String daemonName, long deadline, Logger logger)
+	{
+		String semaphoreDomain = semaphoreShards.getDomain(daemonName);
+		
+		LockEvent event = LockEvent.start("acquireLock", daemonName, semaphoreDomain, 0);
+		
 		boolean status = false;
 		
 		try
 			{
-			List<Attribute> attributes = SDBUtils.getConsistentAttributes(simpleDB, semaphoreDomain, daemonName, logger);
+			List<Attribute> attributes = deadline == NO_DEADLINE
+				? SDBUtils.getConsistentAttributes(simpleDB, semaphoreDomain, daemonName, logger)
+				: SDBUtils.getConsistentAttributes(simpleDB, semaphoreDomain, daemonName, deadline, logger);
 			
 			String semaphore = SDBUtils.getAttributeValue(attributes, SEMAPHORE);
 			
@@ -51,38 +82,122 @@ public class DistributedSingleton
 			
 			if (semaphore.equals("0"))
 				{
-				SDBUtils.putConditionalAttribute(simpleDB, semaphoreDomain, daemonName, SEMAPHORE, "0" /*old value*/, "1" /*new value*/, logger);
+				// Take the semaphore and record the owner in one conditional put so the lock is never held without an owner.
+				List<ReplaceableAttribute> replaceableAttributes = new ArrayList<ReplaceableAttribute>();
 				
-				SDBUtils.putAttribute(simpleDB, semaphoreDomain, daemonName, INSTANCE_ID, this.instanceID, true, logger);
+				replaceableAttributes.add(new ReplaceableAttribute(SEMAPHORE, "1", true));
+				
+				replaceableAttributes.add(new ReplaceableAttribute(INSTANCE_ID, this.instanceID, true));
+				
+				try
+					{
+					if (deadline == NO_DEADLINE)
+						SDBUtils.putConditionalAttributes(simpleDB, semaphoreDomain, daemonName, replaceableAttributes, SEMAPHORE, "0" /*old value*/, logger);
+					else
+						SDBUtils.putConditionalAttributes(simpleDB, semaphoreDomain, daemonName, replaceableAttributes, SEMAPHORE, "0" /*old value*/, deadline, logger);
+					}
+				catch (Exception e)
+					{
+					// If the put was sent but aborted at the deadline, or SimpleDB failed with a server error, then it may have
+					// been applied, so give the lock back before reporting that it wasn't acquired.
+					if (SDBUtils.isOutcomeUnknown(e))
+						rollBackLock(daemonName, semaphoreDomain, logger);
+					
+					throw e;
+					}
 				
 				logger.warn("Aquired lock with instance ID " + this.instanceID);
 				
 				status = true;
+				
+				event.outcome = "acquired";
 				}
 			else
+				{
 				logger.warn("Unable to aquired lock because instance " + instanceID + " is busy running");
+				
+				event.outcome = "busy";
+				}
 			}
 		catch (Exception e)
 			{
-			logger.warn("Failed to acquire lock!", e);
+			logger.warn("Failed to acquire lock" + (deadline == NO_DEADLINE ? "" : " by its deadline") + "!", e);
 			}
 		
+		event.finish();
+		
 		return status;
 	}
 	
+	/**
+	 * Release the lock only if this instance owns it. The rollback has its own short timeout, so a SimpleDB outage can't
+	 * hold up acquireLock() for long, and if it fails the lock is left for releaseAnyStaleLock() to clear.
+	 */
+	private void rollBackLock(String daemonName, String semaphoreDomain, Logger logger)
+	{
+		List<ReplaceableAttribute> replaceableAttributes = new ArrayList<ReplaceableAttribute>();
+		
+		replaceableAttributes.add(new ReplaceableAttribute(SEMAPHORE, "0", true));
+		
+		replaceableAttributes.add(new ReplaceableAttribute(INSTANCE_ID, "", true));
+		
+		try
+			{
+			SDBUtils.putConditionalAttributes(simpleDB, semaphoreDomain, daemonName, replaceableAttributes, INSTANCE_ID, this.instanceID,
+				System.currentTimeMillis() + ROLLBACK_TIMEOUT, logger);
+			
+			logger.warn("Rolled back lock that may have been acquired");
+			}
+		catch (Exception e)
+			{
+			if (SDBUtils.isConditionalCheckFailed(e))
+				logger.info("No lock to roll back since it wasn't acquired");
+			else
+				logger.error("Failed to roll back lock!", e);
+			}
+	}
+	
 	public void releaseLock(String daemonName, long waitTime, Logger logger)
+	{
+		retryReleaseLock(daemonName, waitTime, NO_DEADLINE, logger);
+	}
+	
+	/**
+	 * Same as releaseLock() except no attempt is made, or allowed to run, past timeout msecs from now.
+	 */
+	public void releaseLock(String daemonName, long waitTime, long timeout, Logger logger)
+	{
+		retryReleaseLock(daemonName, waitTime, System.currentTimeMillis() + timeout, logger);
+	}
+	
+	private void retryReleaseLock(String daemonName, long waitTime, long deadline, Logger logger)
 	{
 		// Make several attempts to release the lock.
 		for (int i = 0; i < 3; i++)
+			{
+			LockEvent event = LockEvent.start("releaseLock", daemonName, semaphoreShards.getDomain(daemonName), i);
+			
 			try
 				{
-				doReleaseLock(daemonName, logger);
+				doReleaseLock(daemonName, deadline, logger);
+				
+				event.outcome = "released";
+				event.finish();
 				break;
 				}
 			catch (Exception e1)
 				{
 				logger.error("Failed to release lock!", e1);
 				
+				// Finish before sleeping so the event only times the attempt.
+				event.finish();
+				
+				if (deadline != NO_DEADLINE && System.currentTimeMillis() + waitTime >= deadline)
+					{
+					logger.warn("Giving up releasing lock since another attempt can't start before its deadline");
+					break;
+					}
+				
 				if (waitTime > 0)
 					try
 						{
@@ -94,15 +209,24 @@ public class DistributedSingleton
 						logger.error("Sleep failed", e2);
 						}
 				}
+			}
 	}
 	
-	private void doReleaseLock(String daemonName, Logger logger) throws Exception
+	private void doReleaseLock(String daemonName, long deadline, Logger logger) throws Exception
 	{
-		SDBUtils.putConditionalAttribute(simpleDB, semaphoreDomain, daemonName, SEMAPHORE, "1" /*old value*/, "0" /*new value*/, logger);
+		String semaphoreDomain = semaphoreShards.getDomain(daemonName);
+		
+		if (deadline == NO_DEADLINE)
+			SDBUtils.putConditionalAttribute(simpleDB, semaphoreDomain, daemonName, SEMAPHORE, "1" /*old value*/, "0" /*new value*/, logger);
+		else
+			SDBUtils.putConditionalAttribute(simpleDB, semaphoreDomain, daemonName, SEMAPHORE, "1" /*old value*/, "0" /*new value*/, deadline, logger);
 		
 		logger.warn("Released lock to allow another instance to run");
 		
-		SDBUtils.putAttribute(simpleDB, semaphoreDomain, daemonName, INSTANCE_ID, "", true, logger);
+		if (deadline == NO_DEADLINE)
+			SDBUtils.putAttribute(simpleDB, semaphoreDomain, daemonName, INSTANCE_ID, "", true, logger);
+		else
+			SDBUtils.putAttribute(simpleDB, semaphoreDomain, daemonName, INSTANCE_ID, "", true, deadline, logger);
 		
 		logger.warn("Disassociated lock from any instance ID");
 	}
@@ -112,33 +236,77 @@ public class DistributedSingleton
 	 */
 	public void releaseAnyStaleLock(String daemonName, Logger logger) throws Exception
 	{
-		List<Attribute> attributes = SDBUtils.getConsistentAttributes(simpleDB, semaphoreDomain, daemonName, logger);
+		doReleaseAnyStaleLock(daemonName, NO_DEADLINE, logger);
+	}
 	
-		if (attributes == null || attributes.isEmpty())
-			{
-			SDBUtils.putAttribute(simpleDB, semaphoreDomain, daemonName, SEMAPHORE, "0", true, logger);
-			logger.warn("Created semaphore for " + daemonName + " in " + semaphoreDomain);
-			}
-		else
+	/**
+	 * Same as releaseAnyStaleLock() except it throws if SimpleDB and EC2 haven't responded within timeout msecs. An EC2
+	 * status check that fails or times out throws too, rather than clearing a lock whose instance may still be running.
+	 */
+	public void releaseAnyStaleLock(String daemonName, long timeout, Logger logger) throws Exception
+	{
+		doReleaseAnyStaleLock(daemonName, System.currentTimeMillis() + timeout, logger);
+	}
+	
+	private void doReleaseAnyStaleLock(String daemonName, long deadline, Logger logger) throws Exception
+	{
+		String semaphoreDomain = semaphoreShards.getDomain(daemonName);
+		
+		LockEvent event = LockEvent.start("releaseAnyStaleLock", daemonName, semaphoreDomain, 0);
+		
+		try
 			{
-			String instanceID = SDBUtils.getAttributeValue(attributes, INSTANCE_ID);
-			
-			// Make sure associated instance is still running. If not, then clear the lock.
-			if (instanceID == null || (EC2Utils.isInstanceRunning(ec2, instanceID, logger) == false)
-				|| instanceID.equals(this.instanceID))
+			List<Attribute> attributes = deadline == NO_DEADLINE
+				? SDBUtils.getConsistentAttributes(simpleDB, semaphoreDomain, daemonName, logger)
+				: SDBUtils.getConsistentAttributes(simpleDB, semaphoreDomain, daemonName, deadline, logger);
+		
+			if (attributes == null || attributes.isEmpty())
 				{
-				// TODO - This just clears what's there, instead check if there's a lock and if there is call doReleaseLock.
+				if (deadline == NO_DEADLINE)
+					SDBUtils.putAttribute(simpleDB, semaphoreDomain, daemonName, SEMAPHORE, "0", true, logger);
+				else
+					SDBUtils.putAttribute(simpleDB, semaphoreDomain, daemonName, SEMAPHORE, "0", true, deadline, logger);
 				
-				List<ReplaceableAttribute> replaceableAttributes = new ArrayList<ReplaceableAttribute>();
+				logger.warn("Created semaphore for " + daemonName + " in " + semaphoreDomain);
 				
-				replaceableAttributes.add(new ReplaceableAttribute(SEMAPHORE, "0", true));
+				event.outcome = "created";
+				}
+			else
+				{
+				String instanceID = SDBUtils.getAttributeValue(attributes, INSTANCE_ID);
 				
-				replaceableAttributes.add(new ReplaceableAttribute(INSTANCE_ID, "", true));
-	
-				SDBUtils.putAttributes(simpleDB, semaphoreDomain, daemonName, replaceableAttributes, logger);
-	
-				logger.warn("Released stale lock for " + daemonName + " owned by instance " + instanceID);
+				boolean isInstanceRunning = deadline == NO_DEADLINE
+					? EC2Utils.isInstanceRunning(ec2, instanceID, daemonName, semaphoreDomain, logger)
+					: EC2Utils.isInstanceRunning(ec2, instanceID, daemonName, semaphoreDomain, deadline, logger);
+				
+				// Make sure associated instance is still running. If not, then clear the lock.
+				if (instanceID == null || (isInstanceRunning == false)
+					|| instanceID.equals(this.instanceID))
+					{
+					// TODO - This just clears what's there, instead check if there's a lock and if there is call doReleaseLock.
+					
+					List<ReplaceableAttribute> replaceableAttributes = new ArrayList<ReplaceableAttribute>();
+					
+					replaceableAttributes.add(new ReplaceableAttribute(SEMAPHORE, "0", true));
+					
+					replaceableAttributes.add(new ReplaceableAttribute(INSTANCE_ID, "", true));
+		
+					if (deadline == NO_DEADLINE)
+						SDBUtils.putAttributes(simpleDB, semaphoreDomain, daemonName, replaceableAttributes, logger);
+					else
+						SDBUtils.putAttributes(simpleDB, semaphoreDomain, daemonName, replaceableAttributes, deadline, logger);
+		
+					logger.warn("Released stale lock for " + daemonName + " owned by instance " + instanceID);
+					
+					event.outcome = "released";
+					}
+				else
+					event.outcome = "kept";
 				}
-			}	
+			}
+		finally
+			{
+			event.finish();
+			}
 	}
-}
\ No newline at end of file
+}
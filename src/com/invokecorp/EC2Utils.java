@@ -22,10 +22,43 @@ public class EC2Utils
 	}
 	
 	public static boolean isInstanceRunning(AmazonEC2Client ec2Client, String instanceID, Logger logger)
+	{
+		return isInstanceRunning(ec2Client, instanceID, null, null, logger);
+	}
+	
+	/**
+	 * Same as isInstanceRunning() except the Flight Recorder event records which daemon's lock the check was made for.
+	 */
+	public static boolean isInstanceRunning(AmazonEC2Client ec2Client, String instanceID, String daemonName, String domain, Logger logger)
+	{
+		try
+			{
+			return doIsInstanceRunning(ec2Client, instanceID, daemonName, domain, DistributedSingleton.NO_DEADLINE, logger);
+			}
+		catch (Exception e)
+			{
+			logger.warn(e.getMessage());
+			}
+		
+		return false;
+	}
+	
+	/**
+	 * Same as isInstanceRunning() except the SDK aborts the status check if it hasn't completed by the deadline. A failed
+	 * check is thrown instead of returning false, since the instance may still be running.
+	 */
+	public static boolean isInstanceRunning(AmazonEC2Client ec2Client, String instanceID, String daemonName, String domain, long deadline, Logger logger) throws Exception
+	{
+		return doIsInstanceRunning(ec2Client, instanceID, daemonName, domain, deadline, logger);
+	}
+	
+	private static boolean doIsInstanceRunning(AmazonEC2Client ec2Client, String instanceID, String daemonName, String domain, long deadline, Logger logger) throws Exception
 	{
 		if (instanceID == null || instanceID.trim().length() == 0)
 			return false;
 		
+		RemoteCallEvent event = RemoteCallEvent.start("isInstanceRunning", instanceID, daemonName, domain, 0);
+		
 		try
 			{
 			DescribeInstanceStatusRequest statusRequest = new DescribeInstanceStatusRequest();
@@ -36,21 +69,29 @@ public class EC2Utils
 			
 			statusRequest.setInstanceIds(instanceIDs);
 			
+			if (deadline != DistributedSingleton.NO_DEADLINE)
+				statusRequest.setSdkClientExecutionTimeout(SDBUtils.getRemainingTime(deadline));
+			
 			DescribeInstanceStatusResult statusResult = ec2Client.describeInstanceStatus(statusRequest);
 			
 			List<InstanceStatus> status = statusResult.getInstanceStatuses();
 			
 			if (status.size() > 0 && status.get(0).getInstanceStatus().getStatus().equals("ok")
 				&& status.get(0).getInstanceState().getName().equals("running"))
+				{
+				event.outcome = "running";
 				return true;
+				}
+			
+			event.outcome = "not running";
 			
 			logger.warn("Instance " + instanceID + " isn't running!");
+			
+			return false;
 			}
-		catch (Exception e)
+		finally
 			{
-			logger.warn(e.getMessage());
+			event.finish();
 			}
-		
-		return false;
 	}
 }
\ No newline at end of file
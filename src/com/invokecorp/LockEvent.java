@@ -0,0 +1,56 @@
+// Copyright Invoke Corporation. All rights reserved.
+package com.invokecorp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for an acquire or release of a distributed singleton's lock. Like the other events in this
+ * package it's begun before the operation and committed after, so its duration is the time taken.
+ */
+@Name("com.invokecorp.Lock")
+@Label("Distributed Singleton Lock")
+@Category("Distributed Singleton")
+@Description("Acquire or release of a distributed singleton lock")
+class LockEvent extends Event
+{
+	@Label("Operation")
+	String operation;
+
+	@Label("Daemon Name")
+	String daemonName;
+
+	@Label("Domain")
+	String domain;
+
+	@Label("Outcome")
+	String outcome = "failed";
+
+	@Label("Retry Count")
+	int retryCount;
+
+	static LockEvent start(String operation, String daemonName, String domain, int retryCount)
+	{
+		LockEvent event = new LockEvent();
+		
+		event.operation = operation;
+		event.daemonName = daemonName;
+		event.domain = domain;
+		event.retryCount = retryCount;
+		
+		event.begin();
+		
+		return event;
+	}
+
+	void finish()
+	{
+		end();
+		
+		if (shouldCommit())
+			commit();
+	}
+}
@@ -0,0 +1,60 @@
+// Copyright Invoke Corporation. All rights reserved.
+package com.invokecorp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a remote call other than SimpleDB, i.e. EC2 instance status checks and REST API calls.
+ * The daemon name and domain are only set when the call is made on behalf of a lock, e.g. by releaseAnyStaleLock().
+ */
+@Name("com.invokecorp.RemoteCall")
+@Label("Remote Call")
+@Category("Distributed Singleton")
+@Description("Remote call to EC2 or a REST API")
+class RemoteCallEvent extends Event
+{
+	@Label("Operation")
+	String operation;
+
+	@Label("Target")
+	String target;
+
+	@Label("Daemon Name")
+	String daemonName;
+
+	@Label("Domain")
+	String domain;
+
+	@Label("Outcome")
+	String outcome = "failed";
+
+	@Label("Retry Count")
+	int retryCount;
+
+	static RemoteCallEvent start(String operation, String target, String daemonName, String domain, int retryCount)
+	{
+		RemoteCallEvent event = new RemoteCallEvent();
+		
+		event.operation = operation;
+		event.target = target;
+		event.daemonName = daemonName;
+		event.domain = domain;
+		event.retryCount = retryCount;
+		
+		event.begin();
+		
+		return event;
+	}
+
+	void finish()
+	{
+		end();
+		
+		if (shouldCommit())
+			commit();
+	}
+}
@@ -44,6 +44,21 @@ public class RestClient
 	
 	public static String remoteOperation(String restAPI, boolean isHttpGet,
 		HashMap<String, String> parameters, String userAgent, String username, String password) throws Exception
+	{
+		RemoteCallEvent event = RemoteCallEvent.start("remoteOperation", restAPI, null /*no daemon*/, null /*no domain*/, 0 /*never retried*/);
+		
+		try
+			{
+			return doRemoteOperation(restAPI, isHttpGet, parameters, userAgent, username, password, event);
+			}
+		finally
+			{
+			event.finish();
+			}
+	}
+	
+	private static String doRemoteOperation(String restAPI, boolean isHttpGet, HashMap<String, String> parameters,
+		String userAgent, String username, String password, RemoteCallEvent event) throws Exception
 	{
 		long startTime = System.currentTimeMillis();
 		
@@ -87,6 +102,8 @@ public class RestClient
 
 		String xmlResponse;
 		
+		event.outcome = "HTTP " + httpConnection.getResponseCode();
+		
 		if (httpConnection.getResponseCode() == 200)
 			xmlResponse = getText(httpConnection.getInputStream());
 		else
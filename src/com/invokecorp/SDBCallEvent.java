@@ -0,0 +1,71 @@
+// Copyright Invoke Corporation. All rights reserved.
+package com.invokecorp;
+
+import com.amazonaws.AmazonServiceException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a remote SimpleDB call made by SDBUtils. The item name is the daemon name for semaphores.
+ */
+@Name("com.invokecorp.SDBCall")
+@Label("SimpleDB Call")
+@Category("Distributed Singleton")
+@Description("Remote call to SimpleDB")
+class SDBCallEvent extends Event
+{
+	@Label("Operation")
+	String operation;
+
+	@Label("Item Name")
+	String itemName;
+
+	@Label("Domain")
+	String domain;
+
+	@Label("Outcome")
+	String outcome = "failed";
+
+	@Label("Retry Count")
+	int retryCount;
+
+	static SDBCallEvent start(String operation, String domain, String itemName, int retryCount)
+	{
+		SDBCallEvent event = new SDBCallEvent();
+		
+		event.operation = operation;
+		event.domain = domain;
+		event.itemName = itemName;
+		event.retryCount = retryCount;
+		
+		event.begin();
+		
+		return event;
+	}
+
+	void succeeded()
+	{
+		outcome = "succeeded";
+	}
+
+	/**
+	 * Record the HTTP status code when available so conditional put conflicts (409) and throttling (503) stand out.
+	 */
+	void failed(Exception e)
+	{
+		if (e instanceof AmazonServiceException)
+			outcome = "failed " + ((AmazonServiceException)e).getStatusCode();
+	}
+
+	void finish()
+	{
+		end();
+		
+		if (shouldCommit())
+			commit();
+	}
+}
@@ -0,0 +1,139 @@
+// Copyright Invoke Corporation. All rights reserved.
+package com.invokecorp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.simpledb.AmazonSimpleDBClient;
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.Item;
+import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
+
+/**
+ * Spreads items over a set of SimpleDB domains by hashing the item name, since each domain has its own request-rate
+ * ceiling. An item's domain is its hash modulo the number of domains, so changing the number of shards moves most
+ * items, e.g. going from 1 to N shards moves about (N-1)/N of them. Use rebalance() to move items after the number
+ * of shards changes.
+ */
+public class SDBDomainShards
+{
+	private final List<String> domains;
+
+	public SDBDomainShards(String... domains)
+	{
+		if (domains.length == 0)
+			throw new IllegalArgumentException("At least one domain is required");
+		
+		this.domains = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(domains)));
+	}
+
+	/**
+	 * Shard over numShards domains named baseDomain, baseDomain-1, baseDomain-2, etc.
+	 */
+	public SDBDomainShards(String baseDomain, int numShards)
+	{
+		if (numShards < 1)
+			throw new IllegalArgumentException("At least one shard is required");
+		
+		List<String> domains = new ArrayList<String>();
+		
+		domains.add(baseDomain);
+		
+		for (int i = 1; i < numShards; i++)
+			domains.add(baseDomain + "-" + i);
+		
+		this.domains = Collections.unmodifiableList(domains);
+	}
+
+	public List<String> getDomains()
+	{
+		return domains;
+	}
+
+	/**
+	 * Return the domain that holds the item. String.hashCode() is used since its value is the same in every JVM.
+	 */
+	public String getDomain(String itemName)
+	{
+		return domains.get(Math.floorMod(itemName.hashCode(), domains.size()));
+	}
+
+	public void createDomains(AmazonSimpleDBClient simpleDB, Logger logger) throws Exception
+	{
+		SDBUtils.createDomains(simpleDB, domains, logger);
+	}
+
+	/**
+	 * Move every item in the old shards that belongs in a different domain under the new shards. Each item is copied
+	 * to its new domain before being deleted from its old one, so an interrupted rebalance can simply be run again.
+	 * Daemons should be stopped while rebalancing since they route with only one of the two shard sets.
+	 * @return The number of items that were moved.
+	 */
+	public static int rebalance(AmazonSimpleDBClient simpleDB, SDBDomainShards oldShards, SDBDomainShards newShards, Logger logger) throws Exception
+	{
+		long startTime = System.currentTimeMillis();
+		
+		int numMoved = 0;
+		
+		newShards.createDomains(simpleDB, logger);
+		
+		for (String oldDomain : oldShards.getDomains())
+			{
+			String nextToken = null;
+			
+			do
+				{
+				SelectRequest selectRequest = new SelectRequest("select * from `" + oldDomain + "`", true);
+				
+				selectRequest.setNextToken(nextToken);
+				
+				SelectResult selectResult = SDBUtils.select(simpleDB, oldDomain, selectRequest, logger);
+				
+				for (Item item : selectResult.getItems())
+					{
+					String newDomain = newShards.getDomain(item.getName());
+					
+					if (newDomain.equals(oldDomain))
+						continue;
+					
+					SDBUtils.putAttributes(simpleDB, newDomain, item.getName(), toReplaceable(item.getAttributes()), logger);
+					
+					SDBUtils.deleteItem(simpleDB, oldDomain, item, logger);
+					
+					numMoved++;
+					}
+				
+				nextToken = selectResult.getNextToken();
+				}
+			while (nextToken != null);
+			}
+		
+		logger.info("Rebalance of " + oldShards.getDomains().size() + " into " + newShards.getDomains().size() + " domains moved " + numMoved + " item(s) and took " + (System.currentTimeMillis() - startTime) + " msecs");
+		
+		return numMoved;
+	}
+
+	/**
+	 * Like SDBUtils.convertToReplaceable() except the first value of each attribute replaces whatever the new domain
+	 * already has, e.g. a semaphore created there by releaseAnyStaleLock(), so the copy doesn't end up multi-valued.
+	 */
+	private static List<ReplaceableAttribute> toReplaceable(List<Attribute> attributes)
+	{
+		List<ReplaceableAttribute> replaceableAttributes = new ArrayList<ReplaceableAttribute>();
+		
+		Set<String> names = new HashSet<String>();
+		
+		for (Attribute attribute : attributes)
+			replaceableAttributes.add(new ReplaceableAttribute(attribute.getName(), attribute.getValue(), names.add(attribute.getName())));
+		
+		return replaceableAttributes;
+	}
+}
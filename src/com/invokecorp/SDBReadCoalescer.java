@@ -0,0 +1,233 @@
+// Copyright Invoke Corporation. All rights reserved.
+package com.invokecorp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.simpledb.AmazonSimpleDBClient;
+import com.amazonaws.services.simpledb.model.Attribute;
+
+/**
+ * Coalesces concurrent reads of the same SimpleDB item so that only one request is in flight per (domain, item).
+ * Threads arriving while a consistent read is outstanding wait for it and share its result. Reads that don't need
+ * strict consistency may also be served from the last consistent read if it completed within the freshness window.
+ * Enable by passing an instance to SDBUtils.setReadCoalescer().
+ * <p>
+ * Every write to an item bumps its write version. A read is only shared, or kept as a recent read, while the version
+ * it was issued at is still current, so a caller never sees data from before one of its own writes.
+ * <p>
+ * Expired recent reads, and the write versions of items with nothing in flight or cached, are swept out periodically
+ * so that neither map grows with every item ever touched.
+ */
+public class SDBReadCoalescer
+{
+	static final long SWEEP_INTERVAL = 60000; // Milliseconds between sweeps of expired recent reads and idle write versions
+
+	private final long freshnessWindow; // Milliseconds an eventually consistent read may reuse a prior result
+	private final ConcurrentHashMap<String, InFlightRead> inFlightReads = new ConcurrentHashMap<String, InFlightRead>();
+	private final ConcurrentHashMap<String, RecentRead> recentReads = new ConcurrentHashMap<String, RecentRead>();
+	private final ConcurrentHashMap<String, Long> writeVersions = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong lastWriteVersion = new AtomicLong(); // Versions are unique across items so a dropped one is never reissued
+	private volatile long droppedWriteVersion; // Highest version dropped by a sweep, and so the version of any item without one
+	private final AtomicLong nextSweepTime = new AtomicLong(System.currentTimeMillis() + SWEEP_INTERVAL);
+
+	private static class InFlightRead
+	{
+		final FutureTask<List<Attribute>> task;
+		final long writeVersion;
+		
+		InFlightRead(FutureTask<List<Attribute>> task, long writeVersion)
+		{
+			this.task = task;
+			this.writeVersion = writeVersion;
+		}
+	}
+
+	private static class RecentRead
+	{
+		final List<Attribute> attributes;
+		final long completionTime;
+		final long writeVersion;
+		
+		RecentRead(List<Attribute> attributes, long completionTime, long writeVersion)
+		{
+			this.attributes = attributes;
+			this.completionTime = completionTime;
+			this.writeVersion = writeVersion;
+		}
+	}
+
+	public SDBReadCoalescer(long freshnessWindow)
+	{
+		this.freshnessWindow = freshnessWindow;
+	}
+
+	public List<Attribute> getConsistentAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, Logger logger) throws Exception
+	{
+		return getConsistentAttributes(simpleDB, domain, itemName, 0, logger);
+	}
+	
+	/**
+	 * A joined read is recorded in Flight Recorder with the retry count of the caller that issued it.
+	 */
+	List<Attribute> getConsistentAttributes(final AmazonSimpleDBClient simpleDB, final String domain, final String itemName,
+		final int retryCount, final Logger logger) throws Exception
+	{
+		final String key = getKey(domain, itemName);
+		
+		for (;;)
+			{
+			// Read the version before issuing the read, so a write that races with it makes the result unshareable.
+			final long writeVersion = getWriteVersion(key);
+			
+			FutureTask<List<Attribute>> task = new FutureTask<List<Attribute>>(() ->
+				{
+				List<Attribute> attributes = SDBUtils.doGetConsistentAttributes(simpleDB, domain, itemName, retryCount, logger);
+				
+				if (freshnessWindow > 0 && getWriteVersion(key) == writeVersion)
+					{
+					recentReads.put(key, new RecentRead(attributes, System.currentTimeMillis(), writeVersion));
+					
+					sweepIfDue();
+					}
+				
+				return attributes;
+				});
+			
+			InFlightRead read = new InFlightRead(task, writeVersion);
+			
+			InFlightRead inFlightRead = inFlightReads.putIfAbsent(key, read);
+			
+			if (inFlightRead != null && inFlightRead.writeVersion == writeVersion)
+				{
+				logger.debug("Joined in-flight consistent get of item [" + itemName + "] from " + domain + " domain");
+				
+				return getResult(inFlightRead.task);
+				}
+			
+			// Don't join a read issued before the latest write, replace it so later callers can join this one instead.
+			if (inFlightRead != null && !inFlightReads.replace(key, inFlightRead, read))
+				continue;
+			
+			// This thread owns the read so issue it and let any waiters share the result.
+			try
+				{
+				task.run();
+				}
+			finally
+				{
+				inFlightReads.remove(key, read);
+				}
+			
+			return getResult(task);
+			}
+	}
+
+	public List<Attribute> getAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, Logger logger) throws Exception
+	{
+		String key = getKey(domain, itemName);
+		
+		RecentRead recentRead = recentReads.get(key);
+		
+		if (recentRead != null)
+			{
+			if (recentRead.writeVersion == getWriteVersion(key) && !isExpired(recentRead, System.currentTimeMillis()))
+				{
+				logger.debug("Reused recent get of item [" + itemName + "] from " + domain + " domain");
+				
+				return new ArrayList<Attribute>(recentRead.attributes);
+				}
+			
+			recentReads.remove(key, recentRead);
+			}
+		
+		return getConsistentAttributes(simpleDB, domain, itemName, logger);
+	}
+
+	/**
+	 * Forget any recent read of the item and stop sharing reads issued before now. Called after every write, including
+	 * failed conditional puts since those mean someone else changed the item.
+	 */
+	public void invalidate(String domain, String itemName)
+	{
+		String key = getKey(domain, itemName);
+		
+		writeVersions.put(key, lastWriteVersion.incrementAndGet());
+		
+		recentReads.remove(key);
+		
+		sweepIfDue();
+	}
+
+	private long getWriteVersion(String key)
+	{
+		Long writeVersion = writeVersions.get(key);
+		
+		return writeVersion != null ? writeVersion : droppedWriteVersion;
+	}
+
+	private boolean isExpired(RecentRead recentRead, long now)
+	{
+		return now - recentRead.completionTime > freshnessWindow;
+	}
+
+	/**
+	 * Drop expired recent reads, then the write version of every item with no read in flight or cached. An item without
+	 * a version reads as the highest version dropped so far, which is at least its own, so versions never go backwards
+	 * and a read issued before a write can't become shareable again.
+	 */
+	private void sweepIfDue()
+	{
+		long now = System.currentTimeMillis(), sweepTime = nextSweepTime.get();
+		
+		// Only one thread sweeps per interval.
+		if (now < sweepTime || !nextSweepTime.compareAndSet(sweepTime, now + SWEEP_INTERVAL))
+			return;
+		
+		recentReads.values().removeIf(recentRead -> isExpired(recentRead, now));
+		
+		for (Map.Entry<String, Long> entry : writeVersions.entrySet())
+			{
+			String key = entry.getKey();
+			
+			if (inFlightReads.containsKey(key) || recentReads.containsKey(key))
+				continue;
+			
+			// Raise the dropped version before removing so a concurrent reader never sees this item's version decrease.
+			synchronized (this)
+				{
+				droppedWriteVersion = Math.max(droppedWriteVersion, entry.getValue());
+				}
+			
+			writeVersions.remove(key, entry.getValue());
+			}
+	}
+
+	private static List<Attribute> getResult(FutureTask<List<Attribute>> read) throws Exception
+	{
+		try
+			{
+			// Hand each caller its own list so one caller can't modify what another sees.
+			return new ArrayList<Attribute>(read.get());
+			}
+		catch (ExecutionException e)
+			{
+			if (e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			
+			throw e;
+			}
+	}
+
+	private static String getKey(String domain, String itemName)
+	{
+		return domain + "/" + itemName;
+	}
+}
@@ -0,0 +1,255 @@
+// Copyright Invoke Corporation. All rights reserved.
+package com.invokecorp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.simpledb.AmazonSimpleDBClient;
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.GetAttributesRequest;
+
+/**
+ * Issues deadline-bounded SimpleDB reads. If the first attempt takes longer than the given percentile of recent read
+ * latencies, then a duplicate (hedged) read is sent and whichever response arrives first is used. The hedge budget
+ * caps hedged reads to a fraction of recent reads so that a slow SimpleDB isn't hit with twice the load. Each read adds
+ * hedgeBudget of a token to a small bucket and each hedge takes a whole token, so a long run of fast reads can't save up
+ * enough tokens to hedge every read once SimpleDB slows down.
+ */
+public class SDBRequestHedger
+{
+	static final int LATENCY_SAMPLES = 128; // Number of recent read latencies the hedge threshold is computed from
+	static final int MIN_LATENCY_SAMPLES = 20; // Don't hedge until there's enough history to pick a threshold
+	static final double MAX_HEDGE_TOKENS = 5; // Most hedges that can be made in a burst
+
+	private final double hedgePercentile;
+	private final double hedgeBudget;
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private int numLatencies, nextLatency;
+	private final Object hedgeTokensLock = new Object();
+	private double hedgeTokens; // Guarded by hedgeTokensLock
+	private final ExecutorService executor;
+
+	/**
+	 * @param hedgePercentile
+	 *            Percentile of recent read latencies (0 - 100) after which a hedged read is sent.
+	 * @param hedgeBudget
+	 *            Maximum fraction of reads (0.0 - 1.0) that may be hedged.
+	 */
+	public SDBRequestHedger(double hedgePercentile, double hedgeBudget)
+	{
+		this.hedgePercentile = hedgePercentile;
+		this.hedgeBudget = hedgeBudget;
+		
+		executor = Executors.newCachedThreadPool(runnable ->
+			{
+			Thread thread = new Thread(runnable, SDBRequestHedger.class.getSimpleName());
+			
+			thread.setDaemon(true);
+			
+			return thread;
+			});
+	}
+
+	/**
+	 * @param deadline
+	 *            Absolute time, as returned by System.currentTimeMillis(), by which the read must complete.
+	 * @throws Exception If every attempt failed or the deadline passed before any attempt completed.
+	 */
+	public List<Attribute> getAttributes(final AmazonSimpleDBClient simpleDB, final String domain, final String itemName,
+		final boolean consistentRead, final long deadline, final Logger logger) throws Exception
+	{
+		long startTime = System.currentTimeMillis();
+		
+		if (startTime >= deadline)
+			throw new Exception("Deadline passed before get of item [" + itemName + "] from " + domain + " domain");
+		
+		class ReadAttempt implements Callable<List<Attribute>>
+			{
+			final int attemptNumber;
+			final long submitTime = System.currentTimeMillis();
+			final AtomicBoolean sampled = new AtomicBoolean(); // Each attempt contributes at most one latency sample
+			
+			ReadAttempt(int attemptNumber)
+				{
+				this.attemptNumber = attemptNumber;
+				}
+			
+			public List<Attribute> call() throws Exception
+				{
+				GetAttributesRequest gar = new GetAttributesRequest(domain, itemName);
+				
+				gar.setConsistentRead(consistentRead);
+				
+				gar.setSdkClientExecutionTimeout(SDBUtils.getRemainingTime(deadline));
+				
+				// The hedged read is recorded as a retry of the first.
+				List<Attribute> attributes = SDBUtils.callSimpleDB(consistentRead ? "getConsistentAttributes" : "getAttributes", domain, itemName,
+					attemptNumber, () -> simpleDB.getAttributes(gar).getAttributes());
+				
+				long latency = System.currentTimeMillis() - submitTime;
+				
+				if (sampled.compareAndSet(false, true))
+					recordLatency(latency);
+				
+				logger.info("SimpleDB " + (consistentRead ? "consistent " : "") + "get item [" + itemName + "] from " + domain + " domain took " + latency + " msecs");
+				
+				return attributes;
+				}
+			
+			/**
+			 * An abandoned attempt took at least this long, so sample that instead of dropping the slowest reads.
+			 */
+			void abandon()
+				{
+				if (sampled.compareAndSet(false, true))
+					recordLatency(System.currentTimeMillis() - submitTime);
+				}
+			}
+		
+		List<ReadAttempt> readAttempts = new ArrayList<ReadAttempt>();
+		
+		readAttempts.add(new ReadAttempt(0));
+		
+		ExecutorCompletionService<List<Attribute>> completionService = new ExecutorCompletionService<List<Attribute>>(executor);
+		
+		List<Future<List<Attribute>>> attempts = new ArrayList<Future<List<Attribute>>>();
+		
+		attempts.add(completionService.submit(readAttempts.get(0)));
+		
+		addHedgeTokens();
+		
+		long hedgeTime = startTime + getHedgeThreshold();
+		
+		boolean hedgeConsidered = false;
+		
+		Exception failure = null;
+		
+		try
+			{
+			for (int pending = 1; pending > 0;)
+				{
+				long now = System.currentTimeMillis();
+				
+				if (now >= deadline)
+					break;
+				
+				long waitUntil = hedgeConsidered ? deadline : Math.min(hedgeTime, deadline);
+				
+				Future<List<Attribute>> attempt = completionService.poll(waitUntil - now, TimeUnit.MILLISECONDS);
+				
+				if (attempt == null)
+					{
+					if (!hedgeConsidered && System.currentTimeMillis() >= hedgeTime)
+						{
+						hedgeConsidered = true;
+						
+						if (tryAcquireHedge())
+							{
+							logger.info("Hedging get of item [" + itemName + "] from " + domain + " domain after " + (System.currentTimeMillis() - startTime) + " msecs");
+							
+							readAttempts.add(new ReadAttempt(1));
+							
+							attempts.add(completionService.submit(readAttempts.get(1)));
+							
+							pending++;
+							}
+						}
+					
+					continue;
+					}
+				
+				pending--;
+				
+				try
+					{
+					return attempt.get();
+					}
+				catch (ExecutionException e)
+					{
+					failure = e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+					
+					logger.warn("SimpleDB get of item [" + itemName + "] from " + domain + " domain failed; " + failure.getMessage());
+					}
+				}
+			}
+		finally
+			{
+			boolean deadlinePassed = System.currentTimeMillis() >= deadline;
+			
+			// Abandon any attempt still outstanding now that there's an answer or the deadline has passed. A hedge that
+			// lost to the first attempt isn't sampled since its shorter time says nothing about the tail.
+			for (int i = 0; i < attempts.size(); i++)
+				if (attempts.get(i).cancel(true) && (i == 0 || deadlinePassed))
+					readAttempts.get(i).abandon();
+			}
+		
+		if (failure != null && System.currentTimeMillis() < deadline)
+			throw failure;
+		
+		throw new Exception("SimpleDB get of item [" + itemName + "] from " + domain + " domain missed its deadline after " + (System.currentTimeMillis() - startTime) + " msecs");
+	}
+
+	long getHedgeThreshold()
+	{
+		long[] samples;
+		
+		synchronized (latencies)
+			{
+			if (numLatencies < MIN_LATENCY_SAMPLES)
+				return Long.MAX_VALUE / 2; // Effectively never hedge, without overflowing when added to the start time.
+			
+			samples = Arrays.copyOf(latencies, numLatencies);
+			}
+		
+		Arrays.sort(samples);
+		
+		int index = (int)Math.ceil(hedgePercentile / 100 * samples.length) - 1;
+		
+		return samples[Math.max(0, Math.min(index, samples.length - 1))];
+	}
+
+	private void recordLatency(long latency)
+	{
+		synchronized (latencies)
+			{
+			latencies[nextLatency] = latency;
+			
+			nextLatency = (nextLatency + 1) % LATENCY_SAMPLES;
+			
+			if (numLatencies < LATENCY_SAMPLES)
+				numLatencies++;
+			}
+	}
+
+	private void addHedgeTokens()
+	{
+		synchronized (hedgeTokensLock)
+			{
+			hedgeTokens = Math.min(hedgeTokens + hedgeBudget, MAX_HEDGE_TOKENS);
+			}
+	}
+
+	private boolean tryAcquireHedge()
+	{
+		synchronized (hedgeTokensLock)
+			{
+			if (hedgeTokens < 1)
+				return false;
+			
+			hedgeTokens--;
+			
+			return true;
+			}
+	}
+}
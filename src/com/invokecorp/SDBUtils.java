@@ -4,10 +4,16 @@ package com.invokecorp;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import org.apache.log4j.Logger;
 
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
 import com.amazonaws.services.simpledb.AmazonSimpleDBClient;
 import com.amazonaws.services.simpledb.model.Attribute;
 import com.amazonaws.services.simpledb.model.CreateDomainRequest;
@@ -17,6 +23,8 @@ import com.amazonaws.services.simpledb.model.GetAttributesResult;
 import com.amazonaws.services.simpledb.model.Item;
 import com.amazonaws.services.simpledb.model.PutAttributesRequest;
 import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.amazonaws.services.simpledb.model.SelectResult;
 import com.amazonaws.services.simpledb.model.UpdateCondition;
 import com.amazonaws.services.simpledb.util.SimpleDBUtils;
 
@@ -25,6 +33,28 @@ public class SDBUtils
 	static final int MAX_RETRIES = 100;
 	static final int INITIAL_BACK_OFF_TIME = 500;
 	
+	static final double DEFAULT_HEDGE_PERCENTILE = 95;
+	static final double DEFAULT_HEDGE_BUDGET = 0.1; // Hedge at most 10% of deadline-bounded reads
+	
+	private static volatile SDBReadCoalescer readCoalescer; // Null unless read coalescing has been enabled
+	private static volatile SDBRequestHedger requestHedger = new SDBRequestHedger(DEFAULT_HEDGE_PERCENTILE, DEFAULT_HEDGE_BUDGET);
+	
+	/**
+	 * Enable coalescing of concurrent reads of the same item, or disable it by passing null.
+	 */
+	public static void setReadCoalescer(SDBReadCoalescer coalescer)
+	{
+		readCoalescer = coalescer;
+	}
+	
+	/**
+	 * Replace the hedger used by the deadline-bounded reads, e.g. to change the hedge percentile or budget.
+	 */
+	public static void setRequestHedger(SDBRequestHedger hedger)
+	{
+		requestHedger = hedger;
+	}
+	
 	public static void createDomain(AmazonSimpleDBClient simpleDB, String domain, Logger logger) throws Exception
 	{
 		long multiplier, backOffTime = INITIAL_BACK_OFF_TIME; // Milliseconds to back-off calling BatchPutAttributes
@@ -35,7 +65,7 @@ public class SDBUtils
 				{
 				long startTime = System.currentTimeMillis();
 				
-				simpleDB.createDomain(new CreateDomainRequest(domain));
+				callSimpleDB("createDomain", domain, null, (int)(multiplier - 1), () -> simpleDB.createDomain(new CreateDomainRequest(domain)));
 				
 				logger.info("SimpleDB create of " + domain + " domain took " + (System.currentTimeMillis() - startTime) + " msecs");
 				
@@ -60,6 +90,47 @@ public class SDBUtils
 			throw new Exception("SimpleDB service remains unavailable after " + MAX_RETRIES + " retries!");
 	}
 	
+	/**
+	 * Create all of the domains in parallel, e.g. every shard of an SDBDomainShards, and wait for them to be created.
+	 */
+	public static void createDomains(final AmazonSimpleDBClient simpleDB, List<String> domains, final Logger logger) throws Exception
+	{
+		if (domains.isEmpty())
+			return;
+		
+		long startTime = System.currentTimeMillis();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(domains.size());
+		
+		try
+			{
+			List<Future<Void>> creates = new ArrayList<Future<Void>>();
+			
+			for (final String domain : domains)
+				creates.add(executor.submit(() ->
+					{
+					createDomain(simpleDB, domain, logger);
+					return null;
+					}));
+			
+			for (Future<Void> create : creates)
+				try
+					{
+					create.get();
+					}
+				catch (ExecutionException e)
+					{
+					throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+					}
+			}
+		finally
+			{
+			executor.shutdownNow();
+			}
+		
+		logger.info("SimpleDB create of " + domains.size() + " domain(s) took " + (System.currentTimeMillis() - startTime) + " msecs");
+	}
+	
 	public static List<ReplaceableAttribute> convertToReplaceable(List<Attribute> attributes)
 	{
 		List<ReplaceableAttribute> replaceableAttributes = new ArrayList<ReplaceableAttribute>();
@@ -128,7 +199,9 @@ public class SDBUtils
 				
 		long sdbResponseTime = System.currentTimeMillis();
 		
-		simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes));
+		callSimpleDB("updateAttribute", domain, itemName, 0, () -> simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes)));
+		
+		invalidateRead(domain, itemName);
 		
 		logger.info("SimpleDB update of item [" + itemName + "] in " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	}
@@ -143,7 +216,9 @@ public class SDBUtils
 				
 		long sdbResponseTime = System.currentTimeMillis();
 		
-		simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes));
+		callSimpleDB("updateMultiValueAttribute", domain, itemName, 0, () -> simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes)));
+		
+		invalidateRead(domain, itemName);
 		
 		logger.info("SimpleDB update of item [" + itemName + "] in " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	}
@@ -157,7 +232,9 @@ public class SDBUtils
 				
 		long sdbResponseTime = System.currentTimeMillis();
 		
-		simpleDB.deleteAttributes(new DeleteAttributesRequest(domain, itemName, attributes));
+		callSimpleDB("deleteAttribute", domain, itemName, 0, () -> simpleDB.deleteAttributes(new DeleteAttributesRequest(domain, itemName, attributes)));
+		
+		invalidateRead(domain, itemName);
 		
 		logger.info("SimpleDB delete of attribute [" + attribute + "] with value [" + value + "] for item [" + itemName + "] in " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	}
@@ -167,7 +244,9 @@ public class SDBUtils
 	{
 		long sdbResponseTime = System.currentTimeMillis();
 		
-		simpleDB.deleteAttributes(new DeleteAttributesRequest(domain, itemName, attributes));
+		callSimpleDB("deleteAttributes", domain, itemName, 0, () -> simpleDB.deleteAttributes(new DeleteAttributesRequest(domain, itemName, attributes)));
+		
+		invalidateRead(domain, itemName);
 		
 		logger.info("SimpleDB delete of [" + itemName + "] from " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	}
@@ -178,7 +257,9 @@ public class SDBUtils
 		
 		List<Attribute> attributes = sdbItem.getAttributes();
 		
-		simpleDB.deleteAttributes(new DeleteAttributesRequest(domain, sdbItem.getName(), attributes));
+		callSimpleDB("deleteItem", domain, sdbItem.getName(), 0, () -> simpleDB.deleteAttributes(new DeleteAttributesRequest(domain, sdbItem.getName(), attributes)));
+		
+		invalidateRead(domain, sdbItem.getName());
 		
 		logger.info("SimpleDB delete of [" + sdbItem.getName() + "] from " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	}
@@ -204,7 +285,9 @@ public class SDBUtils
 		for (multiplier = 1; multiplier < MAX_RETRIES; multiplier++, backOffTime = multiplier * INITIAL_BACK_OFF_TIME)
 			try
 				{
-				List<Attribute> attributes = getConsistentAttributes(simpleDB, domain, itemName, logger); // CHANGED TO CONSISTENT READ
+				int retryCount = (int)(multiplier - 1);
+				
+				List<Attribute> attributes = getConsistentAttributes(simpleDB, domain, itemName, retryCount, logger); // CHANGED TO CONSISTENT READ
 							
 				String oldValue = getAttributeValue(attributes, attributeName);
 										
@@ -220,7 +303,7 @@ public class SDBUtils
 						
 						String zeroPaddedNumber = SimpleDBUtils.encodeZeroPadding(newValue, maxNumDigits);
 						
-						putAttribute(simpleDB, domain, itemName, attributeName, zeroPaddedNumber, true, logger);
+						putAttribute(simpleDB, domain, itemName, attributeName, zeroPaddedNumber, true, retryCount, logger);
 						}
 					}
 				else
@@ -229,7 +312,7 @@ public class SDBUtils
 
 					String zeroPaddedNumber = SimpleDBUtils.encodeZeroPadding(newValue, maxNumDigits);
 					
-					putConditionalAttribute(simpleDB, domain, itemName, attributeName, oldValue, zeroPaddedNumber, logger);
+					putConditionalAttribute(simpleDB, domain, itemName, attributeName, oldValue, zeroPaddedNumber, retryCount, logger);
 					}
 				
 				break;
@@ -255,11 +338,25 @@ public class SDBUtils
 		return newValue;
 	}
 	
+	/**
+	 * Same as updateCounter() except the counter's domain is picked from the shards by its item name.
+	 */
+	public static long updateCounter(AmazonSimpleDBClient simpleDB, SDBDomainShards shards, String itemName,
+		String attributeName, long delta, int maxNumDigits, Logger logger) throws Exception
+	{
+		return updateCounter(simpleDB, shards.getDomain(itemName), itemName, attributeName, delta, maxNumDigits, logger);
+	}
+	
 	public static List<Attribute> getAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, Logger logger) throws Exception
 	{
+		SDBReadCoalescer coalescer = readCoalescer;
+		
+		if (coalescer != null)
+			return coalescer.getAttributes(simpleDB, domain, itemName, logger);
+		
 		long sdbResponseTime = System.currentTimeMillis();
 		
-		GetAttributesResult sdbGetResult = simpleDB.getAttributes(new GetAttributesRequest(domain, itemName));
+		GetAttributesResult sdbGetResult = callSimpleDB("getAttributes", domain, itemName, 0, () -> simpleDB.getAttributes(new GetAttributesRequest(domain, itemName)));
 		
 		logger.info("SimpleDB get item [" + itemName + "] from " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	
@@ -267,6 +364,24 @@ public class SDBUtils
 	}
 	
 	public static List<Attribute> getConsistentAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, Logger logger) throws Exception
+	{
+		return getConsistentAttributes(simpleDB, domain, itemName, 0, logger);
+	}
+	
+	/**
+	 * The retry count is only recorded in the Flight Recorder event, e.g. by updateCounter()'s retry loop.
+	 */
+	static List<Attribute> getConsistentAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, int retryCount, Logger logger) throws Exception
+	{
+		SDBReadCoalescer coalescer = readCoalescer;
+		
+		if (coalescer != null)
+			return coalescer.getConsistentAttributes(simpleDB, domain, itemName, retryCount, logger);
+		
+		return doGetConsistentAttributes(simpleDB, domain, itemName, retryCount, logger);
+	}
+	
+	static List<Attribute> doGetConsistentAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, int retryCount, Logger logger) throws Exception
 	{
 		long sdbResponseTime = System.currentTimeMillis();
 		
@@ -274,46 +389,276 @@ public class SDBUtils
 		
 		gar.setConsistentRead(true);
 		
-		GetAttributesResult sdbGetResult = simpleDB.getAttributes(gar);
+		GetAttributesResult sdbGetResult = callSimpleDB("getConsistentAttributes", domain, itemName, retryCount, () -> simpleDB.getAttributes(gar));
 
 		logger.info("SimpleDB consistent get item [" + itemName + "] from " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	
 		return sdbGetResult.getAttributes();
 	}
+	
+	/**
+	 * Same as getAttributes() except the read must complete by the deadline, an absolute time as returned by
+	 * System.currentTimeMillis(). A hedged read is sent if the first attempt is slow. Bypasses any read coalescer.
+	 */
+	public static List<Attribute> getAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, long deadline, Logger logger) throws Exception
+	{
+		return requestHedger.getAttributes(simpleDB, domain, itemName, false, deadline, logger);
+	}
+	
+	/**
+	 * Same as getConsistentAttributes() except the read must complete by the deadline, an absolute time as returned by
+	 * System.currentTimeMillis(). A hedged read is sent if the first attempt is slow. Bypasses any read coalescer.
+	 */
+	public static List<Attribute> getConsistentAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, long deadline, Logger logger) throws Exception
+	{
+		return requestHedger.getAttributes(simpleDB, domain, itemName, true, deadline, logger);
+	}
+		
+	/**
+	 * Fetch one page of the select's results from the domain it selects from. Use the result's next token to fetch the
+	 * next page.
+	 */
+	public static SelectResult select(AmazonSimpleDBClient simpleDB, String domain, SelectRequest selectRequest, Logger logger) throws Exception
+	{
+		SelectResult selectResult = null;
+		
+		long multiplier, backOffTime = INITIAL_BACK_OFF_TIME; // Milliseconds to back-off calling Select
+
+		// SimpleDB may throw Service Unavailable (503) exception. Therefore utilize retries with linear back-off.
+		for (multiplier = 1; multiplier < MAX_RETRIES; multiplier++, backOffTime = multiplier * INITIAL_BACK_OFF_TIME)
+			try
+				{
+				long startTime = System.currentTimeMillis();
+				
+				selectResult = callSimpleDB("select", domain, null, (int)(multiplier - 1), () -> simpleDB.select(selectRequest));
+				
+				logger.info("SimpleDB select of " + selectResult.getItems().size() + " item(s) from " + domain + " domain took " + (System.currentTimeMillis() - startTime) + " msecs");
+				
+				break;
+				}
+			catch (Exception e1)
+				{
+				if (e1 instanceof AmazonServiceException && ((AmazonServiceException)e1).getStatusCode() == 503)
+					{
+					try
+						{
+						logger.info("SimpleDB is unavailable so backing off for " + backOffTime + " msecs...");
+						Thread.sleep(backOffTime);
+						}
+					catch (Exception e2) { logger.error("Sleep failed", e2); }
+					}
+				else
+					throw new Exception("Something went wrong selecting from " + domain + " domain; " + e1.getMessage());
+				}
+		
+		if (multiplier >= MAX_RETRIES)
+			throw new Exception("SimpleDB service remains unavailable after " + MAX_RETRIES + " retries!");
 		
+		return selectResult;
+	}
+	
 	public static void putAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, List<ReplaceableAttribute> attributes, Logger logger)
+	{
+		putAttributes(simpleDB, domain, itemName, attributes, 0, logger);
+	}
+	
+	static void putAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, List<ReplaceableAttribute> attributes, int retryCount, Logger logger)
 	{
 		if (simpleDB == null)
 			return;
 		
 		long sdbResponseTime = System.currentTimeMillis();
 		
-		simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes));
+		callSimpleDB("putAttributes", domain, itemName, retryCount, () -> simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes)));
+		
+		invalidateRead(domain, itemName);
+		
+		logger.info("SimpleDB put item [" + itemName + "] in " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
+	}
+	
+	/**
+	 * Same as putAttributes() except the SDK aborts the put if it hasn't completed by the deadline. Note that an aborted
+	 * put may still have been applied by SimpleDB.
+	 */
+	public static void putAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, List<ReplaceableAttribute> attributes, long deadline, Logger logger) throws Exception
+	{
+		if (simpleDB == null)
+			return;
+		
+		long sdbResponseTime = System.currentTimeMillis();
+		
+		PutAttributesRequest par = new PutAttributesRequest(domain, itemName, attributes);
+		
+		par.setSdkClientExecutionTimeout(getRemainingTime(deadline));
+		
+		callSimpleDB("putAttributes", domain, itemName, 0, () -> simpleDB.putAttributes(par));
+		
+		invalidateRead(domain, itemName);
 		
 		logger.info("SimpleDB put item [" + itemName + "] in " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	}
 	
 	public static void putAttribute(AmazonSimpleDBClient simpleDB, String domain, String itemName, String attributeName, String attributeValue, boolean replace, Logger logger)
+	{
+		putAttribute(simpleDB, domain, itemName, attributeName, attributeValue, replace, 0, logger);
+	}
+	
+	static void putAttribute(AmazonSimpleDBClient simpleDB, String domain, String itemName, String attributeName, String attributeValue, boolean replace, int retryCount, Logger logger)
+	{
+		List<ReplaceableAttribute> attributes = new ArrayList<ReplaceableAttribute>();
+		
+		attributes.add(new ReplaceableAttribute(attributeName, attributeValue, replace));
+		
+		putAttributes(simpleDB, domain, itemName, attributes, retryCount, logger);
+	}
+	
+	public static void putAttribute(AmazonSimpleDBClient simpleDB, String domain, String itemName, String attributeName, String attributeValue, boolean replace, long deadline, Logger logger) throws Exception
 	{
 		List<ReplaceableAttribute> attributes = new ArrayList<ReplaceableAttribute>();
 		
 		attributes.add(new ReplaceableAttribute(attributeName, attributeValue, replace));
 		
-		putAttributes(simpleDB, domain, itemName, attributes, logger);
+		putAttributes(simpleDB, domain, itemName, attributes, deadline, logger);
 	}
 	
 	public static void putConditionalAttribute(AmazonSimpleDBClient simpleDB, String domain, String itemName, String attributeName, String oldAttributeValue, String newAttributeValue, Logger logger)
 	{
-		long sdbResponseTime = System.currentTimeMillis();
+		putConditionalAttribute(simpleDB, domain, itemName, attributeName, oldAttributeValue, newAttributeValue, 0, logger);
+	}
+	
+	static void putConditionalAttribute(AmazonSimpleDBClient simpleDB, String domain, String itemName, String attributeName, String oldAttributeValue, String newAttributeValue, int retryCount, Logger logger)
+	{
+		List<ReplaceableAttribute> attributes = new ArrayList<ReplaceableAttribute>();
+		
+		attributes.add(new ReplaceableAttribute(attributeName, newAttributeValue, true));
+		
+		putConditionalAttributes(simpleDB, domain, itemName, attributes, attributeName, oldAttributeValue, retryCount, logger);
+	}
 	
+	public static void putConditionalAttribute(AmazonSimpleDBClient simpleDB, String domain, String itemName, String attributeName, String oldAttributeValue, String newAttributeValue, long deadline, Logger logger) throws Exception
+	{
 		List<ReplaceableAttribute> attributes = new ArrayList<ReplaceableAttribute>();
 		
 		attributes.add(new ReplaceableAttribute(attributeName, newAttributeValue, true));
 		
-		// Do conditional put to update the attribute.
-		simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes,
-			new UpdateCondition(attributeName, oldAttributeValue, true)));
+		putConditionalAttributes(simpleDB, domain, itemName, attributes, attributeName, oldAttributeValue, deadline, logger);
+	}
+	
+	/**
+	 * Put all of the attributes in one request, provided the condition attribute still has its expected value.
+	 */
+	public static void putConditionalAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, List<ReplaceableAttribute> attributes,
+		String conditionName, String expectedValue, Logger logger)
+	{
+		putConditionalAttributes(simpleDB, domain, itemName, attributes, conditionName, expectedValue, 0, logger);
+	}
+	
+	static void putConditionalAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, List<ReplaceableAttribute> attributes,
+		String conditionName, String expectedValue, int retryCount, Logger logger)
+	{
+		long sdbResponseTime = System.currentTimeMillis();
+		
+		// Do conditional put to update the attributes. A failed one means someone else changed it, so invalidate either way.
+		try
+			{
+			callSimpleDB("putConditionalAttributes", domain, itemName, retryCount, () -> simpleDB.putAttributes(new PutAttributesRequest(domain, itemName, attributes,
+				new UpdateCondition(conditionName, expectedValue, true))));
+			}
+		finally
+			{
+			invalidateRead(domain, itemName);
+			}
+		
+		logger.info("SimpleDB conditional put item [" + itemName + "] in " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
+	}
+	
+	public static void putConditionalAttributes(AmazonSimpleDBClient simpleDB, String domain, String itemName, List<ReplaceableAttribute> attributes,
+		String conditionName, String expectedValue, long deadline, Logger logger) throws Exception
+	{
+		long sdbResponseTime = System.currentTimeMillis();
+		
+		PutAttributesRequest par = new PutAttributesRequest(domain, itemName, attributes,
+			new UpdateCondition(conditionName, expectedValue, true));
+		
+		par.setSdkClientExecutionTimeout(getRemainingTime(deadline));
+		
+		// Do conditional put to update the attributes. A failed one means someone else changed it, so invalidate either way.
+		try
+			{
+			callSimpleDB("putConditionalAttributes", domain, itemName, 0, () -> simpleDB.putAttributes(par));
+			}
+		finally
+			{
+			invalidateRead(domain, itemName);
+			}
 		
 		logger.info("SimpleDB conditional put item [" + itemName + "] in " + domain + " domain took " + (System.currentTimeMillis() - sdbResponseTime) + " msecs");
 	}
+	
+	/**
+	 * Return true if the exception is SimpleDB rejecting a conditional put, in which case nothing was written.
+	 */
+	public static boolean isConditionalCheckFailed(Exception e)
+	{
+		return e instanceof AmazonServiceException && ((AmazonServiceException)e).getStatusCode() == 409;
+	}
+	
+	/**
+	 * Return true if the exception means a write was sent but it's unknown whether SimpleDB applied it, i.e. the SDK
+	 * aborted it at its execution timeout or SimpleDB failed with a server error.
+	 */
+	public static boolean isOutcomeUnknown(Exception e)
+	{
+		if (e instanceof AmazonServiceException)
+			return ((AmazonServiceException)e).getStatusCode() >= 500;
+		
+		return e instanceof ClientExecutionTimeoutException;
+	}
+	
+	/**
+	 * Make a remote SimpleDB call, recording it as a Flight Recorder event.
+	 */
+	static <T> T callSimpleDB(String operation, String domain, String itemName, int retryCount, Supplier<T> call)
+	{
+		SDBCallEvent event = SDBCallEvent.start(operation, domain, itemName, retryCount);
+		
+		try
+			{
+			T result = call.get();
+			
+			event.succeeded();
+			
+			return result;
+			}
+		catch (RuntimeException e)
+			{
+			event.failed(e);
+			throw e;
+			}
+		finally
+			{
+			event.finish();
+			}
+	}
+	
+	/**
+	 * Return the msecs left until the deadline, bounded for use as an SDK client execution timeout.
+	 */
+	static int getRemainingTime(long deadline) throws Exception
+	{
+		long remainingTime = deadline - System.currentTimeMillis();
+		
+		if (remainingTime <= 0)
+			throw new Exception("Deadline passed " + (-remainingTime) + " msecs ago");
+		
+		return (int)Math.min(remainingTime, Integer.MAX_VALUE);
+	}
+	
+	private static void invalidateRead(String domain, String itemName)
+	{
+		SDBReadCoalescer coalescer = readCoalescer;
+		
+		if (coalescer != null)
+			coalescer.invalidate(domain, itemName);
+	}
 }
\ No newline at end of file